@@ -0,0 +1,259 @@
+/* File name:   BufferPool.java
+ * Author:      Mark Kaganovsky
+ * Date:        October 19 2026
+ * Purpose:     A pool of direct byte buffers which connections read into and write
+ *              from, so each connection does not allocate its own.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+
+/**
+ * This class pools direct {@link ByteBuffer}s for connection I/O.
+ *
+ * Only the buffers the channels read into and write from are pooled, those under the object streams of
+ * {@link ChannelStreams} and those of the proxy's relays. The object streams still allocate their own
+ * buffers and handle tables per connection, and every message still allocates its strings and arrays.
+ *
+ * Buffers come in power of two size classes from {@value #MIN_SIZE} to {@value #MAX_SIZE} bytes.
+ * Every thread keeps a small cache of released buffers per size class, overflowing into a shared
+ * bounded queue per size class. Requests larger than the biggest size class are not pooled.
+ * Pooled threads which may die while idle call {@link #drainThreadCache()} when they finish a
+ * connection, so their cached buffers are not lost with them.
+ *
+ * Running with -DbufferPool.debug=true records where every buffer was acquired. Releasing a buffer
+ * twice throws, and buffers which were never released are reported when the JVM exits.
+ *
+ * @author  Mark Kaganovsky
+ * @version 1.0
+ * @see     ChannelStreams
+ * @since   1.8.0_20
+ */
+public class BufferPool {
+	/** {@value} - The smallest size class in bytes. */
+	public static final int MIN_SIZE = 4 * 1024;
+
+	/** {@value} - The largest size class in bytes. */
+	public static final int MAX_SIZE = 64 * 1024;
+
+	/** {@value} - The number of buffers per size class cached by each thread. Kept small, threads may die with their cache. */
+	private static final int THREAD_CACHE_SIZE = 4;
+
+	/** {@value} - The number of buffers per size class kept in the shared queue. */
+	private static final int SHARED_CACHE_SIZE = 256;
+
+	/** The number of size classes. */
+	private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - Integer.numberOfTrailingZeros(MIN_SIZE) + 1;
+
+	/** The pool shared by all connections. Declared after the constants it depends on. */
+	public static final BufferPool DEFAULT = new BufferPool(Boolean.getBoolean("bufferPool.debug"));
+
+	/** The shared free buffers, one queue per size class. */
+	private final ConcurrentLinkedQueue<ByteBuffer>[] shared;
+
+	/** The sizes of the shared queues, {@link ConcurrentLinkedQueue#size()} is not constant time. */
+	private final AtomicInteger[] sharedSizes;
+
+	/** The free buffers cached by each thread, one deque per size class. */
+	private final ThreadLocal<ArrayDeque<ByteBuffer>[]> threadCaches;
+
+	/** The acquisition site of every buffer not yet released, null unless debugging. */
+	private final Map<ByteBuffer, Throwable> outstanding;
+
+
+
+
+	/**
+	 * Default constructor.
+	 *
+	 * @param debug True to track acquired buffers and report leaks.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public BufferPool(boolean debug) {
+		shared = new ConcurrentLinkedQueue[SIZE_CLASSES];
+		sharedSizes = new AtomicInteger[SIZE_CLASSES];
+
+		for(int i = 0; i < SIZE_CLASSES; ++i){
+			shared[i] = new ConcurrentLinkedQueue<>();
+			sharedSizes[i] = new AtomicInteger();
+		}
+
+		threadCaches = ThreadLocal.withInitial(() -> {
+			ArrayDeque<ByteBuffer>[] caches = new ArrayDeque[SIZE_CLASSES];
+
+			for(int i = 0; i < SIZE_CLASSES; ++i){
+				caches[i] = new ArrayDeque<>(THREAD_CACHE_SIZE);
+			}
+
+			return caches;
+		});
+
+		if(debug){
+			// ByteBuffer.equals() compares contents, so buffers have to be tracked by identity.
+			outstanding = Collections.synchronizedMap(new IdentityHashMap<>());
+			Runtime.getRuntime().addShutdownHook(new Thread(this::reportLeaks));
+		}
+		else{
+			outstanding = null;
+		}
+	}
+
+
+
+
+	/**
+	 * Takes a cleared buffer from the pool, allocating one if the pool is empty.
+	 *
+	 * @param capacity The minimum capacity needed.
+	 * @return A direct buffer with at least the requested capacity.
+	 */
+	public ByteBuffer acquire(int capacity) {
+		int sizeClass = sizeClass(capacity);
+		ByteBuffer buffer = null;
+
+		if(sizeClass < 0){
+			buffer = ByteBuffer.allocateDirect(capacity);
+		}
+		else{
+			buffer = threadCaches.get()[sizeClass].pollFirst();
+
+			if(buffer == null){
+				buffer = shared[sizeClass].poll();
+
+				if(buffer != null){
+					sharedSizes[sizeClass].decrementAndGet();
+				}
+			}
+
+			if(buffer == null){
+				buffer = ByteBuffer.allocateDirect(MIN_SIZE << sizeClass);
+			}
+		}
+
+		if(outstanding != null){
+			outstanding.put(buffer, new Throwable("Buffer of " + buffer.capacity() + " bytes acquired here"));
+		}
+
+		buffer.clear();
+		return buffer;
+	}
+
+
+
+
+	/**
+	 * Returns a buffer to the pool. The buffer must not be used afterwards.
+	 *
+	 * @param buffer A buffer obtained from {@link #acquire(int)}.
+	 * @throws IllegalStateException If debugging and the buffer is not outstanding.
+	 */
+	public void release(ByteBuffer buffer) {
+		if(outstanding != null && outstanding.remove(buffer) == null){
+			throw new IllegalStateException("Buffer released twice or not acquired from this pool.");
+		}
+
+		int sizeClass = sizeClass(buffer.capacity());
+
+		// Unpooled sizes are left to the garbage collector.
+		if(sizeClass < 0 || buffer.capacity() != MIN_SIZE << sizeClass){
+			return;
+		}
+
+		ArrayDeque<ByteBuffer> cache = threadCaches.get()[sizeClass];
+
+		if(cache.size() < THREAD_CACHE_SIZE){
+			cache.addFirst(buffer);
+		}
+		else{
+			releaseShared(sizeClass, buffer);
+		}
+	}
+
+
+
+
+	/**
+	 * Moves the buffers cached by the calling thread to the shared queues, where other threads can
+	 * use them. Called by threads which are about to go idle, like those of a cached thread pool.
+	 */
+	public void drainThreadCache() {
+		ArrayDeque<ByteBuffer>[] caches = threadCaches.get();
+
+		for(int i = 0; i < SIZE_CLASSES; ++i){
+			ByteBuffer buffer;
+
+			while((buffer = caches[i].pollFirst()) != null){
+				releaseShared(i, buffer);
+			}
+		}
+
+		threadCaches.remove();
+	}
+
+
+
+
+	/**
+	 * Prints the acquisition site of every buffer which has not been released.
+	 * Does nothing unless debugging.
+	 */
+	public void reportLeaks() {
+		if(outstanding == null){
+			return;
+		}
+
+		synchronized(outstanding){
+			for(Throwable site : outstanding.values()){
+				System.out.println("ERROR: Leaked buffer.");
+				site.printStackTrace(System.out);
+			}
+		}
+	}
+
+
+
+
+	/**
+	 * Puts a buffer in the shared queue of its size class, leaving it to the garbage collector if the queue is full.
+	 *
+	 * @param sizeClass The index of the buffer's size class.
+	 * @param buffer    The free buffer.
+	 */
+	private void releaseShared(int sizeClass, ByteBuffer buffer) {
+		if(sharedSizes[sizeClass].incrementAndGet() <= SHARED_CACHE_SIZE){
+			shared[sizeClass].offer(buffer);
+		}
+		else{
+			sharedSizes[sizeClass].decrementAndGet();
+		}
+	}
+
+
+
+
+	/**
+	 * Finds the smallest size class which fits a capacity.
+	 *
+	 * @param capacity The capacity in bytes.
+	 * @return The index of the size class, or -1 if the capacity is larger than {@link #MAX_SIZE}.
+	 */
+	private static int sizeClass(int capacity) {
+		if(capacity > MAX_SIZE){
+			return -1;
+		}
+
+		if(capacity <= MIN_SIZE){
+			return 0;
+		}
+
+		// Round up to the next power of two.
+		return 32 - Integer.numberOfLeadingZeros(capacity - 1) - Integer.numberOfTrailingZeros(MIN_SIZE);
+	}
+}
@@ -0,0 +1,272 @@
+/* File name:   ChannelStreams.java
+ * Author:      Mark Kaganovsky
+ * Date:        October 19 2026
+ * Purpose:     Input and output streams over a blocking SocketChannel using pooled buffers.
+ * Class List:  ChannelStreams
+ *              ChannelInputStream
+ *              ChannelOutputStream
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+
+/**
+ * This class creates streams over a blocking {@link SocketChannel}, so that the object streams
+ * can be used on TCP and Unix domain socket channels alike.
+ *
+ * {@link java.nio.channels.Channels#newInputStream} is not used because its streams hold the
+ * channel's blocking lock while reading, which blocks writes from the connection's writer thread.
+ * These streams do not lock, a channel supports one reader and one writer at the same time.
+ * Their buffers come from {@link BufferPool#DEFAULT} and are returned when the stream is closed.
+ *
+ * @author  Mark Kaganovsky
+ * @version 1.0
+ * @see     ServerSocketRunnable
+ * @since   9
+ */
+public class ChannelStreams {
+	/** {@value} - The size of each stream's buffer in bytes. */
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+
+
+
+	/** Only static methods. */
+	private ChannelStreams() {
+	}
+
+
+
+
+	/**
+	 * Creates an input stream reading from a channel. Closing it closes the channel.
+	 *
+	 * @param channel A connected channel in blocking mode.
+	 * @return The input stream.
+	 */
+	public static InputStream newInputStream(SocketChannel channel) {
+		return new ChannelInputStream(channel);
+	}
+
+
+
+
+	/**
+	 * Creates an output stream writing to a channel. Closing it closes the channel.
+	 * Every write is passed to the channel before it returns, so flushing is never needed.
+	 *
+	 * @param channel A connected channel in blocking mode.
+	 * @return The output stream.
+	 */
+	public static OutputStream newOutputStream(SocketChannel channel) {
+		return new ChannelOutputStream(channel);
+	}
+
+
+
+
+	/**
+	 * Closes a channel unless the returned future is completed in time. Channels have no read timeout,
+	 * this bounds a handshake with a server which may not follow the protocol. A read blocked when the
+	 * channel is closed throws {@link java.nio.channels.AsynchronousCloseException}.
+	 *
+	 * @param channel The channel to close.
+	 * @param millis  The time allowed in milliseconds.
+	 * @return A future to complete once the channel no longer needs the timeout.
+	 */
+	public static CompletableFuture<Void> closeOnTimeout(SocketChannel channel, long millis) {
+		CompletableFuture<Void> deadline = new CompletableFuture<>();
+
+		deadline.orTimeout(millis, TimeUnit.MILLISECONDS).whenComplete((ignored, e) -> {
+			if(e instanceof TimeoutException){
+				try{
+					channel.close();
+				}
+				catch(IOException e1){
+					// The blocked read fails either way.
+				}
+			}
+		});
+
+		return deadline;
+	}
+
+
+
+
+	/**
+	 * A buffered input stream over a channel.
+	 *
+	 * @author  Mark Kaganovsky
+	 * @version 1.0
+	 * @since   9
+	 */
+	private static class ChannelInputStream extends InputStream {
+		/** The channel to read from. */
+		private final SocketChannel channel;
+
+		/** Bytes read from the channel but not from the stream, kept in drain mode. Null once closed. */
+		private ByteBuffer buffer;
+
+		/**
+		 * Default constructor.
+		 *
+		 * @param c The channel to read from.
+		 */
+		public ChannelInputStream(SocketChannel c) {
+			channel = c;
+			buffer = BufferPool.DEFAULT.acquire(BUFFER_SIZE);
+			buffer.flip();
+		}
+
+		@Override
+		public synchronized int read() throws IOException {
+			return fill() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0){
+				return 0;
+			}
+
+			if(!fill()){
+				return -1;
+			}
+
+			int count = Math.min(len, buffer.remaining());
+			buffer.get(b, off, count);
+			return count;
+		}
+
+		/**
+		 * Reads from the channel if the buffer is empty. The object streams read in small pieces.
+		 *
+		 * @return False if the channel has reached the end of stream.
+		 * @throws IOException If the stream is closed or the read fails.
+		 */
+		private boolean fill() throws IOException {
+			if(buffer == null){
+				throw new IOException("Stream closed");
+			}
+
+			if(buffer.hasRemaining()){
+				return true;
+			}
+
+			buffer.clear();
+			int count = channel.read(buffer);
+			buffer.flip();
+
+			return count >= 0;
+		}
+
+		@Override
+		public synchronized int available() {
+			return buffer == null ? 0 : buffer.remaining();
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			if(buffer != null){
+				BufferPool.DEFAULT.release(buffer);
+				buffer = null;
+				channel.close();
+			}
+		}
+	}
+
+
+
+
+	/**
+	 * An output stream over a channel which copies through a direct buffer.
+	 *
+	 * @author  Mark Kaganovsky
+	 * @version 1.0
+	 * @since   9
+	 */
+	private static class ChannelOutputStream extends OutputStream {
+		/** The channel to write to. */
+		private final SocketChannel channel;
+
+		/** The buffer bytes are copied through, null once closed. */
+		private ByteBuffer buffer;
+
+		/**
+		 * Default constructor.
+		 *
+		 * @param c The channel to write to.
+		 */
+		public ChannelOutputStream(SocketChannel c) {
+			channel = c;
+			buffer = BufferPool.DEFAULT.acquire(BUFFER_SIZE);
+		}
+
+		@Override
+		public synchronized void write(int b) throws IOException {
+			checkOpen();
+
+			buffer.clear();
+			buffer.put((byte)b);
+			drain();
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) throws IOException {
+			checkOpen();
+
+			while(len > 0){
+				int count = Math.min(len, buffer.capacity());
+
+				buffer.clear();
+				buffer.put(b, off, count);
+				drain();
+
+				off += count;
+				len -= count;
+			}
+		}
+
+		/**
+		 * Checks that the stream has not been closed.
+		 *
+		 * @throws IOException If the stream is closed.
+		 */
+		private void checkOpen() throws IOException {
+			if(buffer == null){
+				throw new IOException("Stream closed");
+			}
+		}
+
+		/**
+		 * Writes the whole buffer to the channel.
+		 *
+		 * @throws IOException If the write fails.
+		 */
+		private void drain() throws IOException {
+			buffer.flip();
+
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			if(buffer != null){
+				BufferPool.DEFAULT.release(buffer);
+				buffer = null;
+				channel.close();
+			}
+		}
+	}
+}
@@ -13,14 +13,17 @@
 import java.awt.Color;
 import java.awt.EventQueue;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.net.UnixDomainSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.swing.JFrame;
@@ -39,6 +42,9 @@ import javax.swing.JFrame;
  * @since   1.8.0_20
  */
 public class ClientView extends javax.swing.JFrame {
+	/** {@value} - A host starting with this connects to the Unix domain socket at the rest of the host, the port is ignored. */
+	public static final String UNIX_HOST_PREFIX = "unix:";
+	
 	private ClientConnectionRunnable clientConnectionRunnable;
 	
 	/** Creates the GUI. */
@@ -136,8 +142,8 @@ public class ClientView extends javax.swing.JFrame {
 		/** The port in string format. */
 		private String portStr;
 		
-		/** Socket representing the server. */
-		private Socket server;
+		/** Channel representing the server, over TCP or a Unix domain socket. */
+		private SocketChannel server;
 		
 		/** Object input stream. Only {@link String}s are received over it. */
 		private ObjectInputStream input;
@@ -176,6 +182,79 @@ public class ClientView extends javax.swing.JFrame {
 			// Prevent the user from calling connect multiple times before a connection can be made.
 			setControlsConnected();
 			
+			// Same host servers can be reached through their Unix domain socket instead of TCP.
+			if(host.startsWith(UNIX_HOST_PREFIX)){
+				if(!connectUnixDomain()){
+					return;
+				}
+			}
+			else if(!connectTcp()){
+				return;
+			}
+			
+			/* Some servers will accept your connection but may not follow the same object serialization protocol,
+			 * causing a readObject() call to block forever, therefore the connection is closed if the handshake times out.
+			 */
+			CompletableFuture<Void> handshake = ChannelStreams.closeOnTimeout(server, 5000);
+			
+			// Get object IO streams.
+			boolean continueWithConnection = false;
+			InputStream rawInput = null;
+			
+			try{
+				output = new ObjectOutputStream(ChannelStreams.newOutputStream(server));
+				output.flush();
+				rawInput = ChannelStreams.newInputStream(server);
+				input = new ObjectInputStream(rawInput);
+				
+				// The timeout may have closed the channel just after the header arrived.
+				if(!handshake.complete(null)){
+					throw new ClosedChannelException();
+				}
+				
+				continueWithConnection = true;
+			}
+			catch(ClosedChannelException e){
+				appendToTerminal("CLIENT>ERROR: Time out. A connection to the server was made but it does not follow the same protocol.\n");
+			}
+			catch(IOException e){
+				appendToTerminal("CLIENT>ERROR: Could not create I/O streams - " + e.getMessage() + "\n");
+			}
+			catch(Exception e){
+				appendToTerminal("CLIENT>ERROR: Some other error occured - " + e.getMessage() + "\n");
+			}
+			finally{
+				if(!continueWithConnection){
+					// Returns the input stream's buffer when the object stream was never created.
+					if(input == null && rawInput != null){
+						try{
+							rawInput.close();
+						}
+						catch(IOException e){
+							// The connection is closing anyway.
+						}
+					}
+					
+					closeConnection();
+					setControlsDisconnected();
+					return;
+				}
+			}
+			
+			// Successfully connected.
+			appendToTerminal("Connected to " + server.toString() + "\n");
+			
+			handleActiveConnection();
+		}
+		
+		/**
+		 * Connects to the host and port entered by the user over TCP.
+		 * 
+		 * This method alters the GUIs state.
+		 * 
+		 * @return True if connected, false if the connection failed and the controls have been reset.
+		 */
+		private boolean connectTcp(){
 			// Try to convert the port entered by the user to an int.
 			int port;
 			
@@ -185,7 +264,7 @@ public class ClientView extends javax.swing.JFrame {
 			catch(NumberFormatException e){
 				appendToTerminal("CLIENT>ERROR: Invalid port number.\n");
 				setControlsDisconnected();
-				return;
+				return false;
 			}
 			
 			boolean continueWithConnection = false;
@@ -205,21 +284,14 @@ public class ClientView extends javax.swing.JFrame {
 			finally{
 				if(!continueWithConnection){
 					setControlsDisconnected();
-					return;
+					return false;
 				}
 			}
 			
-			// Host exists, try to connect to server with timeout.
+			// Host exists, try to connect to server.
 			try {
 				continueWithConnection = false;
-				server = new Socket();
-				
-				/* Some servers will accept your connection but may not follow the same object serialization protocol,
-				 * causing a readObject() call to block forever, therefore a socket timeout needs to be used.
-				 */
-				server.setSoTimeout(5000);
-				
-				server.connect(new InetSocketAddress(host, port));
+				server = SocketChannel.open(new InetSocketAddress(host, port));
 				continueWithConnection = true;
 			}
 			catch(IllegalArgumentException e){
@@ -237,39 +309,36 @@ public class ClientView extends javax.swing.JFrame {
 			finally{
 				if(!continueWithConnection){
 					setControlsDisconnected();
-					return;
+					return false;
 				}
 			}
 			
-			// Get object IO streams.
+			return true;
+		}
+		
+		/**
+		 * Connects to the Unix domain socket named by the host.
+		 * 
+		 * This method alters the GUIs state.
+		 * 
+		 * @return True if connected, false if the connection failed and the controls have been reset.
+		 */
+		private boolean connectUnixDomain(){
 			try{
-				continueWithConnection = false;
-				output = new ObjectOutputStream(server.getOutputStream());
-				output.flush();
-				input = new ObjectInputStream(server.getInputStream());
-				continueWithConnection = true;
-			}
-			catch(SocketTimeoutException e){
-				appendToTerminal("CLIENT>ERROR: Time out. A connection to the server was made but it does not follow the same protocol.\n");
+				server = SocketChannel.open(UnixDomainSocketAddress.of(host.substring(UNIX_HOST_PREFIX.length())));
 			}
 			catch(IOException e){
-				appendToTerminal("CLIENT>ERROR: Could not create I/O streams - " + e.getMessage() + "\n");
+				appendToTerminal("CLIENT>ERROR: Connection refused: server is not available. Check socket path or restart server.\n");
+				setControlsDisconnected();
+				return false;
 			}
 			catch(Exception e){
 				appendToTerminal("CLIENT>ERROR: Some other error occured - " + e.getMessage() + "\n");
+				setControlsDisconnected();
+				return false;
 			}
-			finally{
-				if(!continueWithConnection){
-					closeConnection();
-					setControlsDisconnected();
-					return;
-				}
-			}
-			
-			// Successfully connected.
-			appendToTerminal("Connected to " + server.toString() + "\n");
 			
-			handleActiveConnection();
+			return true;
 		}
 		
 		/**
@@ -353,12 +422,18 @@ public class ClientView extends javax.swing.JFrame {
 					input.close();					
 				}
 				
-				server.close();
+				if(server != null){
+					server.close();
+				}
+				
 				appendToTerminal("CLIENT>Connection closed.\n");
 			}
 			catch (IOException e) {
 				appendToTerminal("CLIENT>ERROR: An error occured while closing the connection.\n");
 			}
+			
+			// This thread ends with the connection, give its buffers back to the shared pool.
+			BufferPool.DEFAULT.drainThreadCache();
 		}
 	}
 	
@@ -0,0 +1,260 @@
+/* File name:   CommandScheduler.java
+ * Author:      Mark Kaganovsky
+ * Date:        October 19 2026
+ * Purpose:     Executes the server's commands on separate lanes so that slow
+ *              commands can not hold up cheap ones.
+ * Class List:  CommandScheduler
+ *              Lane
+ */
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+
+/**
+ * This class executes the commands received by the {@link Server}.
+ *
+ * Commands are split into a fast lane for the cheap commands (echo, time, date, help, cls) and a slow
+ * lane for everything else. Each lane has its own bounded thread pool and bounded queue, so a slow
+ * command only ever waits behind other slow commands. When a lane's queue is full the command is
+ * answered with {@link #RESPONSE_BUSY} instead of being queued.
+ *
+ * Submitting returns a future, callers which need their responses in order chain the futures.
+ *
+ * @author  Mark Kaganovsky
+ * @version 1.0
+ * @see     ServerSocketRunnable
+ * @since   1.8.0_20
+ */
+public class CommandScheduler {
+	/** {@value} - The response to a command which is rejected because its lane is full. */
+	public static final String RESPONSE_BUSY = "ERROR: Server busy, try again later.";
+
+	/** {@value} - The response to a command which is not recognized. */
+	public static final String RESPONSE_UNRECOGNIZED = "ERROR: Unrecognized command.";
+
+	/** The command verifier. Group 1 is the command name. */
+	private static final Pattern VALID_COMMAND_PATTERN = Pattern.compile("-(end|echo|time|date|help|cls)(-.+)?");
+
+	/** The names of the commands which are executed on the fast lane. */
+	private static final Set<String> FAST_COMMANDS = new HashSet<>(Arrays.asList("echo", "time", "date", "help", "cls"));
+
+	/** The time formatter, thread safe unlike {@link java.text.SimpleDateFormat}. */
+	private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("hh:mm:ss a");
+
+	/** The date formatter. */
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("d MMMM yyyy");
+
+	/** The lane for cheap commands. */
+	private final Lane fastLane;
+
+	/** The lane for expensive commands. */
+	private final Lane slowLane;
+
+
+
+
+	/** Creates a scheduler with a fast lane sized to the processors and a small slow lane. */
+	public CommandScheduler() {
+		this(Runtime.getRuntime().availableProcessors(), 1024, 2, 64);
+	}
+
+
+
+
+	/**
+	 * Creates a scheduler with the given lane sizes.
+	 *
+	 * @param fastThreads The number of threads executing fast commands.
+	 * @param fastQueue   The number of fast commands which may wait for a thread.
+	 * @param slowThreads The number of threads executing slow commands.
+	 * @param slowQueue   The number of slow commands which may wait for a thread.
+	 */
+	public CommandScheduler(int fastThreads, int fastQueue, int slowThreads, int slowQueue) {
+		fastLane = new Lane("fast", fastThreads, fastQueue);
+		slowLane = new Lane("slow", slowThreads, slowQueue);
+	}
+
+
+
+
+	/**
+	 * Checks if a command asks the server to close the connection.
+	 * The end command is never scheduled, the connection handles it itself.
+	 *
+	 * @param command The command received from a client.
+	 * @return True if the command is a valid end command.
+	 */
+	public static boolean isEndCommand(String command) {
+		Matcher matcher = VALID_COMMAND_PATTERN.matcher(command);
+		return matcher.matches() && matcher.group(1).equals("end");
+	}
+
+
+
+
+	/**
+	 * Schedules a command on its lane.
+	 *
+	 * @param command The command received from a client.
+	 * @return A future which completes with the response to the command.
+	 */
+	public CompletableFuture<String> submit(String command) {
+		Matcher matcher = VALID_COMMAND_PATTERN.matcher(command);
+
+		// Unrecognized commands are cheap to answer so they go on the fast lane.
+		Lane lane = !matcher.matches() || FAST_COMMANDS.contains(matcher.group(1)) ? fastLane : slowLane;
+
+		return lane.submit(command);
+	}
+
+
+
+
+	/** Stops both lanes, commands which are already queued are still executed. */
+	public void shutdown() {
+		fastLane.executor.shutdown();
+		slowLane.executor.shutdown();
+	}
+
+
+
+
+	/** @return The metrics of both lanes on one line, totals over every connection since the server started. */
+	@Override
+	public String toString() {
+		return "Scheduler totals for all connections - " + fastLane + "; " + slowLane;
+	}
+
+
+
+
+	/**
+	 * Executes a command on the calling thread.
+	 *
+	 * @param command The command received from a client.
+	 * @return The response to the command.
+	 */
+	private static String execute(String command) {
+		if(!VALID_COMMAND_PATTERN.matcher(command).matches()){
+			return RESPONSE_UNRECOGNIZED;
+		}
+
+		if(command.startsWith("-echo-")){
+			return "ECHO:" + command.substring(6);
+		}
+		else if(command.startsWith("-echo")){
+			return "ECHO:";
+		}
+		else if(command.startsWith("-time")){
+			return "TIME: " + TIME_FORMAT.format(LocalDateTime.now());
+		}
+		else if(command.startsWith("-date")){
+			return "DATE: " + DATE_FORMAT.format(LocalDateTime.now());
+		}
+		else if(command.startsWith("-help")){
+			return "Available Services:\nend\necho\ntime\ndate\nhelp\ncls\n";
+		}
+		else if(command.startsWith("-cls")){
+			return Server.SR_CLS;
+		}
+
+		return RESPONSE_UNRECOGNIZED;
+	}
+
+
+
+
+	/**
+	 * A bounded thread pool with its own queue depth limit and latency metrics.
+	 *
+	 * @author  Mark Kaganovsky
+	 * @version 1.0
+	 * @since   1.8.0_20
+	 */
+	private static class Lane {
+		/** The name of the lane, used in the metrics. */
+		private final String name;
+
+		/** The threads executing the lane's commands. */
+		private final ThreadPoolExecutor executor;
+
+		/** The number of commands executed. */
+		private final LongAdder completed = new LongAdder();
+
+		/** The number of commands rejected because the queue was full. */
+		private final LongAdder rejected = new LongAdder();
+
+		/** The total time from submission to response of all executed commands, in nanoseconds. */
+		private final LongAdder totalLatency = new LongAdder();
+
+		/** The longest time from submission to response, in nanoseconds. */
+		private final AtomicLong maxLatency = new AtomicLong();
+
+		/**
+		 * Default constructor.
+		 *
+		 * @param n          The name of the lane.
+		 * @param threads    The number of threads.
+		 * @param queueLimit The number of commands which may wait for a thread.
+		 */
+		public Lane(String n, int threads, int queueLimit) {
+			name = n;
+			executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueLimit), (runnable) -> {
+				Thread thread = new Thread(runnable, "CommandScheduler-" + n);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		/**
+		 * Schedules a command on this lane.
+		 *
+		 * @param command The command received from a client.
+		 * @return A future which completes with the response, or with {@link #RESPONSE_BUSY} if the queue is full.
+		 */
+		public CompletableFuture<String> submit(String command) {
+			long submitted = System.nanoTime();
+
+			try {
+				return CompletableFuture.supplyAsync(() -> {
+					String response = execute(command);
+
+					long latency = System.nanoTime() - submitted;
+					completed.increment();
+					totalLatency.add(latency);
+					maxLatency.accumulateAndGet(latency, Math::max);
+
+					return response;
+				}, executor);
+			}
+			catch (RejectedExecutionException e) {
+				rejected.increment();
+				return CompletableFuture.completedFuture(RESPONSE_BUSY);
+			}
+		}
+
+		/** @return The metrics of this lane. */
+		@Override
+		public String toString() {
+			long count = completed.sum();
+			double average = count == 0 ? 0 : totalLatency.sum() / (double)count / 1e6;
+
+			return String.format("%s: %d done, %d rejected, %d queued, avg %.3f ms, max %.3f ms",
+					name, count, rejected.sum(), executor.getQueue().size(), average, maxLatency.get() / 1e6);
+		}
+	}
+}
@@ -0,0 +1,320 @@
+/* File name:   MultiplexedConnection.java
+ * Author:      Mark Kaganovsky
+ * Date:        October 19 2026
+ * Purpose:     Client side of a connection carrying many logical command streams.
+ * Class List:  MultiplexedConnection
+ *              Stream
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+
+/**
+ * This class is the client side of a multiplexed connection to the {@link Server}.
+ *
+ * Any number of {@link Stream}s can be opened over one connection. Each stream is an independent
+ * command stream, its responses arrive in the order its commands were sent no matter how slow the
+ * commands of other streams are. A stream has at most {@value MultiplexedSession#STREAM_WINDOW}
+ * unanswered commands, sending more blocks until a response arrives. At most
+ * {@value MultiplexedSession#MAX_STREAMS} streams may be open at a time, a stream stays open until
+ * its end command has been answered.
+ *
+ * Example:
+ * <pre>
+ * try(MultiplexedConnection connection = new MultiplexedConnection("localhost", 65535)){
+ *     MultiplexedConnection.Stream stream = connection.openStream();
+ *     System.out.println(stream.send("-time").get());
+ * }
+ * </pre>
+ *
+ * @author  Mark Kaganovsky
+ * @version 1.0
+ * @see     MultiplexedSession
+ * @since   9
+ */
+public class MultiplexedConnection implements Closeable {
+	/** Channel representing the server. */
+	private SocketChannel server;
+
+	private ObjectInputStream input;
+	private ObjectOutputStream output;
+
+	/** The open streams by id. */
+	private Map<Integer, Stream> streams;
+
+	/** The id given to the next stream. */
+	private AtomicInteger nextId;
+
+
+
+
+	/**
+	 * Connects to the server and switches the connection to multiplexed mode.
+	 *
+	 * @param host The host to connect to.
+	 * @param port The port to connect on.
+	 * @throws IOException If the connection fails or the server does not support multiplexing.
+	 */
+	public MultiplexedConnection(String host, int port) throws IOException {
+		streams = new ConcurrentHashMap<>();
+		nextId = new AtomicInteger(1);
+
+		server = SocketChannel.open(new InetSocketAddress(host, port));
+
+		// A server which does not follow the protocol could block the handshake forever.
+		CompletableFuture<Void> handshake = ChannelStreams.closeOnTimeout(server, 5000);
+
+		try{
+			output = new ObjectOutputStream(ChannelStreams.newOutputStream(server));
+			output.flush();
+			input = new ObjectInputStream(ChannelStreams.newInputStream(server));
+
+			output.writeObject(Server.MUX_HELLO);
+			output.flush();
+
+			if(!Server.SR_MUX.equals(input.readObject())){
+				throw new IOException("The server does not support multiplexed streams.");
+			}
+
+			// Streams may stay idle for any amount of time once connected.
+			if(!handshake.complete(null)){
+				throw new ClosedChannelException();
+			}
+		}
+		catch(IOException | ClassNotFoundException e){
+			handshake.complete(null);
+			closeStreams();
+
+			if(e instanceof ClosedChannelException){
+				throw new SocketTimeoutException("The server did not answer the handshake.");
+			}
+
+			throw e instanceof IOException ? (IOException)e : new IOException("Unknown response recieved.", e);
+		}
+
+		Thread reader = new Thread(this::readResponses, "MultiplexedConnection-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+
+
+
+	/**
+	 * Opens a new stream. The server sees the stream once its first command is sent.
+	 *
+	 * @return The new stream.
+	 * @throws IllegalStateException If {@value MultiplexedSession#MAX_STREAMS} streams are already open.
+	 */
+	public synchronized Stream openStream() {
+		if(streams.size() >= MultiplexedSession.MAX_STREAMS){
+			throw new IllegalStateException("Too many open streams, end a stream before opening another.");
+		}
+
+		Stream stream = new Stream(nextId.getAndIncrement());
+		streams.put(stream.id, stream);
+		return stream;
+	}
+
+
+
+
+	/** Closes the connection, the unanswered commands of every stream fail. The reader thread releases the streams. */
+	@Override
+	public void close() throws IOException {
+		server.close();
+	}
+
+
+
+
+	/** Reads response frames and hands them to their streams until the connection closes. */
+	private void readResponses() {
+		IOException failure;
+
+		try{
+			while(true){
+				int id = input.readInt();
+				String response = MultiplexedSession.readPayload(input);
+
+				Stream stream = streams.get(id);
+
+				if(stream == null){
+					throw new IOException("Response recieved for unknown stream " + id);
+				}
+
+				stream.receive(response);
+			}
+		}
+		catch(IOException e){
+			failure = e;
+		}
+
+		// Fail every command which will never be answered.
+		for(Stream stream : streams.values()){
+			stream.fail(failure);
+		}
+
+		closeStreams();
+
+		// This thread ends with the connection, give its buffers back to the shared pool.
+		BufferPool.DEFAULT.drainThreadCache();
+	}
+
+
+
+
+	/**
+	 * Closes the object streams and the channel, which returns the streams' buffers to the pool.
+	 * Must not be called while the reader thread may be reading, it would wait for the read.
+	 */
+	private void closeStreams() {
+		try{
+			server.close();
+		}
+		catch(IOException e){
+			// Do nothing.
+		}
+
+		// Each stream is closed on its own, a failing flush must not keep the other's buffer.
+		try{
+			if(output != null){
+				synchronized(output){
+					output.close();
+				}
+			}
+		}
+		catch(IOException e){
+			// The channel is already closed.
+		}
+
+		try{
+			if(input != null){
+				input.close();
+			}
+		}
+		catch(IOException e){
+			// The channel is already closed.
+		}
+	}
+
+
+
+
+	/**
+	 * A logical command stream within the connection.
+	 *
+	 * @author  Mark Kaganovsky
+	 * @version 1.0
+	 * @since   9
+	 */
+	public class Stream {
+		/** The stream id sent with every frame. */
+		private final int id;
+
+		/** The futures of the unanswered commands, oldest first. */
+		private final Queue<CompletableFuture<String>> unanswered = new ConcurrentLinkedQueue<>();
+
+		/** One permit per command which may still be sent before a response arrives. */
+		private final Semaphore window = new Semaphore(MultiplexedSession.STREAM_WINDOW);
+
+		/** True once the end command has been sent. */
+		private boolean ended;
+
+		/**
+		 * Default constructor.
+		 *
+		 * @param i The stream id.
+		 */
+		private Stream(int i) {
+			id = i;
+		}
+
+		/**
+		 * Sends a command on this stream, blocking while the stream's window is full.
+		 * Sending the end command closes the stream once it is answered with {@link Server#SR_END}.
+		 *
+		 * @param command The command to send.
+		 * @return A future which completes with the response.
+		 * @throws InterruptedException  If interrupted while waiting for the window.
+		 * @throws IOException           If the command could not be sent.
+		 * @throws IllegalStateException If the end command has already been sent.
+		 */
+		public CompletableFuture<String> send(String command) throws InterruptedException, IOException {
+			window.acquire();
+
+			CompletableFuture<String> response = new CompletableFuture<>();
+
+			// The future has to be queued in the same order the frames are written.
+			synchronized(output){
+				if(ended){
+					window.release();
+					throw new IllegalStateException("The stream has ended.");
+				}
+
+				// Queued before writing, the response may arrive before writeFrame() returns.
+				unanswered.add(response);
+
+				try{
+					MultiplexedSession.writeFrame(output, id, command);
+				}
+				catch(IOException e){
+					unanswered.remove(response);
+					window.release();
+					throw e;
+				}
+
+				ended = CommandScheduler.isEndCommand(command);
+			}
+
+			return response;
+		}
+
+		/**
+		 * Completes the oldest unanswered command.
+		 *
+		 * @param response The response to it.
+		 */
+		private void receive(String response) {
+			CompletableFuture<String> oldest = unanswered.poll();
+
+			if(response.equals(Server.SR_END)){
+				streams.remove(id);
+			}
+
+			window.release();
+
+			if(oldest != null){
+				oldest.complete(response);
+			}
+		}
+
+		/**
+		 * Fails every unanswered command.
+		 *
+		 * @param cause Why the commands will never be answered.
+		 */
+		private void fail(IOException cause) {
+			CompletableFuture<String> oldest;
+
+			while((oldest = unanswered.poll()) != null){
+				oldest.completeExceptionally(cause);
+			}
+		}
+	}
+}
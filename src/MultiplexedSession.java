@@ -0,0 +1,263 @@
+/* File name:   MultiplexedSession.java
+ * Author:      Mark Kaganovsky
+ * Date:        October 19 2026
+ * Purpose:     Serves many logical command streams sharing a single client connection.
+ * Class List:  MultiplexedSession
+ *              Stream
+ */
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+
+
+/**
+ * This class serves a connection which has switched to multiplexed mode.
+ *
+ * A client switches by sending {@link Server#MUX_HELLO} as its first object, the server answers with
+ * {@link Server#SR_MUX}. From then on both sides exchange frames made of a stream id, a payload length
+ * and the UTF-8 payload. A client frame carries a command, a server frame carries the response to the
+ * oldest unanswered command of that stream. A stream is opened by its first frame and ends once the end
+ * command has been answered with {@link Server#SR_END}.
+ *
+ * Every stream answers its commands in order, independently of the other streams. A stream may have at
+ * most {@value #STREAM_WINDOW} unanswered commands, the server stops reading the connection while a
+ * stream has more. At most {@value #MAX_STREAMS} streams may be open, a frame opening another one
+ * closes the connection. Responses are written by the connection's writer thread, never by the
+ * scheduler's threads. Once a response can not be written the connection is closed, which stops the reader.
+ *
+ * @author  Mark Kaganovsky
+ * @version 1.0
+ * @see     MultiplexedConnection
+ * @since   1.8.0_20
+ */
+public class MultiplexedSession {
+	/** {@value} - The number of unanswered commands a stream may have. */
+	public static final int STREAM_WINDOW = 16;
+
+	/** {@value} - The largest frame payload in bytes. */
+	public static final int MAX_PAYLOAD = 1024 * 1024;
+
+	/** {@value} - The number of streams a connection may have open. */
+	public static final int MAX_STREAMS = 256;
+
+	private ObjectInputStream input;
+	private ObjectOutputStream output;
+
+	/** The connection, closed as soon as a response can not be written. */
+	private Closeable connection;
+
+	/** The scheduler which executes the commands. */
+	private CommandScheduler scheduler;
+
+	/** The connection's single writer thread, which writes every response frame. */
+	private Executor writer;
+
+	/** The open streams by id. Only used by the reading thread. */
+	private Map<Integer, Stream> streams;
+
+	/** Completes once every response so far, on any stream, has been written. */
+	private CompletableFuture<Void> allWrites = CompletableFuture.completedFuture(null);
+
+
+
+
+	/**
+	 * Default constructor.
+	 *
+	 * @param in  The connection's input stream, after the handshake.
+	 * @param out The connection's output stream, after the handshake.
+	 * @param c   The connection, closed if a response can not be written so that reading fails.
+	 * @param cs  The scheduler which executes the commands.
+	 * @param w   The connection's writer, it must run one task at a time in order.
+	 */
+	public MultiplexedSession(ObjectInputStream in, ObjectOutputStream out, Closeable c, CommandScheduler cs, Executor w) {
+		input = in;
+		output = out;
+		connection = c;
+		scheduler = cs;
+		writer = w;
+		streams = new HashMap<>();
+	}
+
+
+
+
+	/**
+	 * Reads frames and schedules their commands until the client closes the connection.
+	 *
+	 * @throws EOFException           When the client closes the connection, once every response has been written.
+	 * @throws InterruptedIOException If interrupted while waiting for a stream's window.
+	 * @throws IOException            If a frame could not be read, opens too many streams, or a response could not be written.
+	 */
+	public void run() throws IOException {
+		try{
+			while(true){
+				int id = input.readInt();
+				String command = readPayload(input);
+
+				Stream stream = streams.get(id);
+
+				if(stream == null){
+					if(streams.size() >= MAX_STREAMS){
+						throw new IOException("Too many streams, more than " + MAX_STREAMS);
+					}
+
+					stream = new Stream(id);
+					streams.put(id, stream);
+				}
+
+				// Stop reading while the stream's window is full, the client's frames then back up in its socket.
+				try{
+					stream.window.acquire();
+				}
+				catch(InterruptedException e){
+					throw new InterruptedIOException("Interrupted while waiting for stream " + id);
+				}
+
+				if(CommandScheduler.isEndCommand(command)){
+					// Answer the end command once everything before it has been answered.
+					streams.remove(id);
+					stream.respond(CompletableFuture.completedFuture(Server.SR_END));
+				}
+				else{
+					stream.respond(scheduler.submit(command));
+				}
+
+				allWrites = CompletableFuture.allOf(allWrites, stream.pendingWrites);
+
+				// Stop reading once a response could not be written, join() rethrows the failure.
+				if(allWrites.isCompletedExceptionally()){
+					allWrites.join();
+				}
+			}
+		}
+		catch(EOFException | ClosedChannelException e){
+			// Rethrows the failed write which closed the channel, if that is why reading stopped.
+			allWrites.join();
+			throw e;
+		}
+	}
+
+
+
+
+	/**
+	 * Writes a frame and flushes it.
+	 *
+	 * @param out     The stream to write to.
+	 * @param id      The stream id.
+	 * @param payload The command or response.
+	 * @throws IOException If the frame could not be written.
+	 */
+	public static void writeFrame(ObjectOutputStream out, int id, String payload) throws IOException {
+		byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+
+		if(bytes.length > MAX_PAYLOAD){
+			throw new IOException("Frame too large " + bytes.length);
+		}
+
+		out.writeInt(id);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		out.flush();
+	}
+
+
+
+
+	/**
+	 * Reads the payload of a frame whose stream id has already been read.
+	 *
+	 * @param in The stream to read from.
+	 * @return The command or response.
+	 * @throws IOException If the payload could not be read or is too large.
+	 */
+	public static String readPayload(DataInput in) throws IOException {
+		int length = in.readInt();
+
+		if(length < 0 || length > MAX_PAYLOAD){
+			throw new IOException("Invalid frame length " + length);
+		}
+
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+
+
+	/**
+	 * A logical command stream within the session.
+	 *
+	 * @author  Mark Kaganovsky
+	 * @version 1.0
+	 * @since   1.8.0_20
+	 */
+	private class Stream {
+		/** The stream id chosen by the client. */
+		private final int id;
+
+		/** One permit per command which may be read before the stream's oldest response is written. */
+		private final Semaphore window = new Semaphore(STREAM_WINDOW);
+
+		/** Completes once every response of this stream so far has been written. */
+		private CompletableFuture<Void> pendingWrites = CompletableFuture.completedFuture(null);
+
+		/**
+		 * Default constructor.
+		 *
+		 * @param i The stream id chosen by the client.
+		 */
+		public Stream(int i) {
+			id = i;
+		}
+
+		/**
+		 * Writes a response on the connection's writer once the previous responses of this stream have been written.
+		 * The caller has taken a permit of the stream's window, it is released once the response is written or has failed.
+		 *
+		 * @param response The future response.
+		 */
+		public void respond(CompletableFuture<String> response) {
+			pendingWrites = pendingWrites.thenCombine(response, (previous, r) -> r).thenAcceptAsync((r) -> {
+				// Frames of different streams interleave, but never within a frame, there is only one writer.
+				try{
+					writeFrame(output, id, r);
+				}
+				catch(IOException e){
+					throw new UncheckedIOException(e);
+				}
+			}, writer);
+
+			// The permit is freed however the response completes, also when it is skipped because an earlier write failed.
+			pendingWrites.whenComplete((ignored, e) -> {
+				window.release();
+
+				if(e != null){
+					try{
+						connection.close();
+					}
+					catch(IOException e1){
+						// The reader fails either way.
+					}
+				}
+			});
+		}
+	}
+}
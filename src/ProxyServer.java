@@ -0,0 +1,616 @@
+/* File name:   ProxyServer.java
+ * Author:      Mark Kaganovsky
+ * Date:        October 19 2026
+ * Purpose:     A front proxy which listens on the public port and shards clients
+ *              across several backend Server processes running on local ports.
+ * Class List:  ProxyServer
+ *              Backend
+ *              Relay
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+
+/**
+ * This class is a front proxy for the {@link Server}.
+ *
+ * It listens on the public port and routes every client session to one of several backend
+ * {@link Server} instances listening on local ports. The bytes of a session are relayed untouched
+ * using a single NIO selector thread, so the object serialization protocol passes straight through.
+ *
+ * Sessions are routed with consistent hashing on the client's IP address (the default) or by picking
+ * the backend with the least active connections. Hashing keeps a client on the same backend across its
+ * connections, and only the clients of a backend which joins or dies move. All the clients of one host
+ * share an address and so share a backend, use -lc to spread them, like on a single machine setup where
+ * every client is 127.0.0.1. A health checker periodically connects to every backend and dead backends
+ * are skipped until they accept again. A backend which has never accepted a probe is still starting, its
+ * failed probes do not mark it dead.
+ *
+ * @author  Mark Kaganovsky
+ * @version 1.0
+ * @see     Server
+ * @since   1.8.0_20
+ */
+public class ProxyServer {
+	/** {@value} - The size of each relay buffer in bytes. */
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	/** {@value} - The number of points each backend gets on the consistent hash ring. */
+	private static final int VIRTUAL_NODES = 100;
+
+	/** {@value} - The delay between health checks in milliseconds. */
+	private static final long HEALTH_CHECK_INTERVAL = 2000;
+
+	/** {@value} - The connect timeout of a health check in milliseconds. */
+	private static final int HEALTH_CHECK_TIMEOUT = 1000;
+
+	/** The backends which sessions are routed to. */
+	private final List<Backend> backends;
+
+	/** The consistent hash ring, maps a hash to the backend owning it. */
+	private final TreeMap<Integer, Backend> ring;
+
+	/** True if least connections routing is used instead of consistent hashing. */
+	private final boolean leastConnections;
+
+	/** The selector which all relayed channels are registered with. */
+	private Selector selector;
+
+
+
+
+	/**
+	 * Default constructor.
+	 *
+	 * @param backendPorts     The local ports of the backend servers.
+	 * @param leastConnections True to route with least connections, false to use consistent hashing.
+	 */
+	public ProxyServer(List<Integer> backendPorts, boolean leastConnections) {
+		this.leastConnections = leastConnections;
+		backends = new ArrayList<>();
+		ring = new TreeMap<>();
+
+		for(int port : backendPorts){
+			Backend backend = new Backend(new InetSocketAddress("localhost", port));
+			backends.add(backend);
+
+			for(int i = 0; i < VIRTUAL_NODES; ++i){
+				ring.put(hash(backend.address + "#" + i), backend);
+			}
+		}
+	}
+
+
+
+
+	/**
+	 * Starts the proxy.
+	 *
+	 * @param args [-spawn] [-lc] PUBLIC_PORT BACKEND_PORT...
+	 *             -spawn starts a {@link Server} process for every backend port.
+	 *             -lc routes with least connections instead of consistent hashing, which spreads the clients of one host.
+	 */
+	public static void main(String[] args) {
+		boolean spawn = false;
+		boolean leastConnections = false;
+		List<Integer> ports = new ArrayList<>();
+
+		// Parse the command line.
+		for(String arg : args){
+			if(arg.equals("-spawn")){
+				spawn = true;
+			}
+			else if(arg.equals("-lc")){
+				leastConnections = true;
+			}
+			else{
+				try {
+					ports.add(Integer.parseInt(arg));
+				}
+				catch (NumberFormatException e) {
+					System.out.println("ERROR: The provided port '" + arg + "' is not a number.");
+					return;
+				}
+			}
+		}
+
+		if(ports.size() < 2){
+			System.out.println("Usage: java ProxyServer [-spawn] [-lc] PUBLIC_PORT BACKEND_PORT...");
+			return;
+		}
+
+		int publicPort = ports.remove(0);
+
+		// Start the backend servers if requested, they are destroyed when the proxy exits.
+		if(spawn){
+			List<Process> processes = new ArrayList<>();
+
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				for(Process process : processes){
+					process.destroy();
+				}
+			}));
+
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+			String classPath = System.getProperty("java.class.path");
+
+			for(int port : ports){
+				try {
+					processes.add(new ProcessBuilder(java, "-cp", classPath, "Server", Integer.toString(port)).inheritIO().start());
+					System.out.println("Proxy: Started backend server on port " + port);
+				}
+				catch (IOException e) {
+					System.out.println("ERROR: Could not start backend server - " + e.getMessage());
+					return;
+				}
+			}
+		}
+
+		System.out.println("Proxy: Using " + (leastConnections ? "least connections" : "consistent hashing") + " routing.");
+
+		new ProxyServer(ports, leastConnections).run(publicPort);
+	}
+
+
+
+
+	/**
+	 * Starts the health checker and runs the selector loop until an error occurs.
+	 *
+	 * @param publicPort The port to listen for clients on.
+	 */
+	public void run(int publicPort) {
+		ScheduledExecutorService healthChecker = Executors.newSingleThreadScheduledExecutor();
+		healthChecker.scheduleWithFixedDelay(this::checkBackends, 0, HEALTH_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+
+		try(ServerSocketChannel listener = ServerSocketChannel.open(); Selector sel = Selector.open()) {
+			selector = sel;
+			listener.bind(new InetSocketAddress(publicPort));
+			listener.configureBlocking(false);
+			listener.register(selector, SelectionKey.OP_ACCEPT);
+
+			System.out.println("Proxy: Listening on port " + publicPort);
+
+			// Selector loop.
+			while(true){
+				selector.select();
+
+				for(SelectionKey key : selector.selectedKeys()){
+					if(!key.isValid()){
+						continue;
+					}
+
+					if(key.isAcceptable()){
+						accept(listener);
+					}
+					else{
+						((Relay)key.attachment()).handle(key);
+					}
+				}
+
+				selector.selectedKeys().clear();
+			}
+		}
+		catch (IllegalArgumentException e){
+			System.out.println("ERROR: Out of range port number.");
+		}
+		catch (IOException e) {
+			System.out.println("ERROR: " + e.getMessage());
+		}
+
+		System.out.println("Proxy: Shutting down...");
+		healthChecker.shutdownNow();
+	}
+
+
+
+
+	/**
+	 * Accepts a new client and starts connecting it to a backend.
+	 *
+	 * @param listener The channel to accept the client from.
+	 */
+	private void accept(ServerSocketChannel listener) {
+		SocketChannel client;
+
+		try {
+			client = listener.accept();
+
+			if(client == null){
+				return;
+			}
+
+			client.configureBlocking(false);
+		}
+		catch (IOException e) {
+			System.out.println("ERROR: Could not accept client - " + e.getMessage());
+			return;
+		}
+
+		System.out.println("Proxy: Connecting to a client " + client.socket());
+
+		new Relay(client).connectBackend();
+	}
+
+
+
+
+	/**
+	 * Chooses the backend for a client session.
+	 *
+	 * @param client The address of the client.
+	 * @return The chosen backend, or null if every backend is dead.
+	 */
+	private Backend route(SocketAddress client) {
+		if(leastConnections){
+			Backend best = null;
+
+			for(Backend backend : backends){
+				if(backend.alive && (best == null || backend.connections.get() < best.connections.get())){
+					best = backend;
+				}
+			}
+
+			return best;
+		}
+
+		// Walk clockwise around the ring from the hash of the client's IP address until a live backend is found.
+		String key = client instanceof InetSocketAddress ? ((InetSocketAddress)client).getAddress().getHostAddress() : client.toString();
+		int clientHash = hash(key);
+
+		for(Backend backend : ring.tailMap(clientHash).values()){
+			if(backend.alive){
+				return backend;
+			}
+		}
+
+		for(Backend backend : ring.headMap(clientHash).values()){
+			if(backend.alive){
+				return backend;
+			}
+		}
+
+		return null;
+	}
+
+
+
+
+	/**
+	 * Probes every backend with a plain connect and updates whether it is alive.
+	 * The probe closes before the stream handshake, which the server does not log.
+	 * A backend which has never accepted a probe is still starting, like a spawned server, so a failed probe leaves it as it is.
+	 */
+	private void checkBackends() {
+		for(Backend backend : backends){
+			boolean alive;
+
+			try(Socket probe = new Socket()) {
+				probe.connect(backend.address, HEALTH_CHECK_TIMEOUT);
+				alive = true;
+			}
+			catch (IOException e) {
+				alive = false;
+			}
+
+			if(!backend.started){
+				if(!alive){
+					continue;
+				}
+
+				backend.started = true;
+				System.out.println("Proxy: Backend " + backend.address + " is up.");
+				backend.alive = true;
+			}
+			else if(alive != backend.alive){
+				System.out.println("Proxy: Backend " + backend.address + " is " + (alive ? "up." : "down."));
+				backend.alive = alive;
+			}
+		}
+	}
+
+
+
+
+	/**
+	 * Hashes a string for the consistent hash ring. Mixes the bits of {@link String#hashCode()} with the
+	 * MurmurHash3 finalizer so that similar strings, like neighbouring client addresses, land far apart.
+	 *
+	 * @param s The string to hash.
+	 * @return The position on the ring.
+	 */
+	private static int hash(String s) {
+		int h = s.hashCode();
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		return h ^ (h >>> 16);
+	}
+
+
+
+
+	/**
+	 * A backend server which client sessions can be routed to.
+	 *
+	 * @author  Mark Kaganovsky
+	 * @version 1.0
+	 * @since   1.8.0_20
+	 */
+	private static class Backend {
+		/** The local address the backend listens on. */
+		private final InetSocketAddress address;
+
+		/** The number of sessions currently routed to this backend. */
+		private final AtomicInteger connections = new AtomicInteger();
+
+		/** False once a health check or a connect fails, true again once a health check succeeds. */
+		private volatile boolean alive = true;
+
+		/** True once a health check has succeeded, until then the backend may still be starting. */
+		private volatile boolean started;
+
+		/**
+		 * Default constructor.
+		 *
+		 * @param a The local address the backend listens on.
+		 */
+		public Backend(InetSocketAddress a) {
+			address = a;
+		}
+	}
+
+
+
+
+	/**
+	 * A client session relayed to a backend.
+	 *
+	 * Each direction has its own pooled buffer which is always kept in fill mode. A side is only read from
+	 * while the buffer towards the other side has room, so a slow reader applies back pressure.
+	 * When one side closes its output, the close is forwarded once its buffered bytes are written.
+	 *
+	 * @author  Mark Kaganovsky
+	 * @version 1.0
+	 * @since   1.8.0_20
+	 */
+	private class Relay {
+		/** The client's channel. */
+		private final SocketChannel client;
+
+		/** The backend's channel, null until a backend is chosen. */
+		private SocketChannel server;
+
+		/** The backend this session is routed to. */
+		private Backend backend;
+
+		/** Bytes read from the client waiting to be written to the backend. */
+		private final ByteBuffer toServer = BufferPool.DEFAULT.acquire(BUFFER_SIZE);
+
+		/** Bytes read from the backend waiting to be written to the client. */
+		private final ByteBuffer toClient = BufferPool.DEFAULT.acquire(BUFFER_SIZE);
+
+		/** True once the client has closed its output. */
+		private boolean clientEof;
+
+		/** True once the backend has closed its output. */
+		private boolean serverEof;
+
+		/** True once the session has been closed. */
+		private boolean closed;
+
+		/**
+		 * Default constructor.
+		 *
+		 * @param c The accepted client channel, in non blocking mode.
+		 */
+		public Relay(SocketChannel c) {
+			client = c;
+		}
+
+		/** Routes the session and starts a non blocking connect, trying other backends if one refuses. */
+		public void connectBackend() {
+			while(true){
+				try {
+					backend = route(client.getRemoteAddress());
+				}
+				catch (IOException e) {
+					backend = null;
+				}
+
+				if(backend == null){
+					System.out.println("ERROR: No backend server is available.");
+					close();
+					return;
+				}
+
+				backend.connections.incrementAndGet();
+
+				try {
+					server = SocketChannel.open();
+					server.configureBlocking(false);
+					server.connect(backend.address);
+
+					client.register(selector, 0, this);
+					server.register(selector, SelectionKey.OP_CONNECT, this);
+					updateInterest();
+					return;
+				}
+				catch (IOException e) {
+					markDead();
+				}
+			}
+		}
+
+		/**
+		 * Handles a ready key belonging to this session.
+		 *
+		 * @param key The ready key of either the client or the backend channel.
+		 */
+		public void handle(SelectionKey key) {
+			try {
+				if(key.isConnectable()){
+					try {
+						server.finishConnect();
+					}
+					catch (IOException e) {
+						// The backend refused, route the session again. Nothing has been sent to it yet.
+						markDead();
+						connectBackend();
+						return;
+					}
+				}
+
+				if(key.channel() == client){
+					if(key.isReadable() && client.read(toServer) < 0){
+						clientEof = true;
+					}
+
+					if(key.isWritable()){
+						drain(toClient, client);
+					}
+				}
+				else{
+					if(key.isReadable() && server.read(toClient) < 0){
+						serverEof = true;
+					}
+
+					if(key.isWritable()){
+						drain(toServer, server);
+					}
+				}
+
+				// Forward half closes once everything before them has been written.
+				if(clientEof && toServer.position() == 0 && server.isConnected()){
+					server.shutdownOutput();
+				}
+
+				if(serverEof && toClient.position() == 0){
+					client.shutdownOutput();
+				}
+
+				if(clientEof && serverEof && toServer.position() == 0 && toClient.position() == 0){
+					close();
+				}
+				else{
+					updateInterest();
+				}
+			}
+			catch (IOException e) {
+				close();
+			}
+		}
+
+		/**
+		 * Writes as much of a buffer as the channel will take.
+		 *
+		 * @param buffer  The buffer, in fill mode.
+		 * @param channel The channel to write to.
+		 * @throws IOException If the write fails.
+		 */
+		private void drain(ByteBuffer buffer, SocketChannel channel) throws IOException {
+			buffer.flip();
+			channel.write(buffer);
+			buffer.compact();
+		}
+
+		/** Sets the interest operations of both channels from the state of the buffers. */
+		private void updateInterest() {
+			int clientOps = 0;
+			int serverOps = 0;
+
+			if(!clientEof && toServer.hasRemaining()){
+				clientOps |= SelectionKey.OP_READ;
+			}
+
+			if(toClient.position() > 0){
+				clientOps |= SelectionKey.OP_WRITE;
+			}
+
+			if(server.isConnectionPending()){
+				serverOps = SelectionKey.OP_CONNECT;
+			}
+			else{
+				if(!serverEof && toClient.hasRemaining()){
+					serverOps |= SelectionKey.OP_READ;
+				}
+
+				if(toServer.position() > 0){
+					serverOps |= SelectionKey.OP_WRITE;
+				}
+			}
+
+			client.keyFor(selector).interestOps(clientOps);
+			server.keyFor(selector).interestOps(serverOps);
+		}
+
+		/** Marks the current backend as dead and releases its channel. */
+		private void markDead() {
+			if(backend.alive){
+				System.out.println("Proxy: Backend " + backend.address + " is down.");
+				backend.alive = false;
+			}
+
+			backend.connections.decrementAndGet();
+
+			try {
+				if(server != null){
+					server.close();
+				}
+			}
+			catch (IOException e) {
+				// Do nothing.
+			}
+
+			server = null;
+			backend = null;
+		}
+
+		/** Closes both channels of the session and returns its buffers to the pool. */
+		private void close() {
+			if(closed){
+				return;
+			}
+
+			closed = true;
+
+			if(backend != null){
+				backend.connections.decrementAndGet();
+			}
+
+			System.out.println("Proxy: Closing client connection...");
+
+			BufferPool.DEFAULT.release(toServer);
+			BufferPool.DEFAULT.release(toClient);
+
+			try {
+				client.close();
+
+				if(server != null){
+					server.close();
+				}
+			}
+			catch (IOException e) {
+				System.out.println("ERROR: Could not close connection. " + e.getMessage());
+			}
+		}
+	}
+}
@@ -8,8 +8,22 @@
  */
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -31,6 +45,15 @@ public class Server {
 	/** {@value} - The server response for for closing a connection. */
 	public static final String SR_END  = "end";
 	
+	/**
+	 * The first object sent by a client which wants multiplexed streams, see {@link MultiplexedSession}.
+	 * It starts with a NUL character, so it is not a command and can not be typed into the {@link ClientView}.
+	 */
+	public static final String MUX_HELLO = "\0mux";
+	
+	/** {@value} - The server response accepting multiplexed streams. */
+	public static final String SR_MUX = "mux";
+	
 	
 	
 	
@@ -40,13 +63,29 @@ public class Server {
 	 * 
 	 * @param args Takes an optional port number as an argument.
 	 *             If one is not supplied then 65535 is used.
+	 *             -unix PATH also listens on a Unix domain socket at PATH for clients on the same host.
+	 *             -shm PATH also serves clients through the experimental shared memory file at PATH.
 	 */
 	public static void main(String[] args) {
 		int port = 65535;
 		
+		// Check if same host transports have been requested from the command line.
+		List<String> arguments = new ArrayList<>(Arrays.asList(args));
+		String unixPath;
+		String shmPath;
+		
+		try {
+			unixPath = removeOption(arguments, "-unix");
+			shmPath = removeOption(arguments, "-shm");
+		}
+		catch (IllegalArgumentException e) {
+			System.out.println("ERROR: " + e.getMessage());
+			return;
+		}
+		
 		// Check if a port argument has been provided from the command line.
-		if(args.length == 1){
-			String portString = args[0];
+		if(arguments.size() == 1){
+			String portString = arguments.get(0);
 			
 			System.out.println("Using provided port: " + portString);
 			
@@ -65,15 +104,41 @@ public class Server {
 		// Create a thread pool.
 		ExecutorService executorService = Executors.newCachedThreadPool();
 		
-		// Create and run the server.
-		try(ServerSocket serverSocket = new ServerSocket(port)) {
+		// Create the scheduler which executes the commands of every connection.
+		CommandScheduler scheduler = new CommandScheduler();
+		
+		// Listen for same host clients in the background. The channel is kept so it can be closed if the server stops.
+		ServerSocketChannel unixChannel = unixPath == null ? null : openUnixDomain(unixPath);
+		
+		if(unixChannel != null){
+			executorService.execute(() -> listenUnixDomain(unixChannel, executorService, scheduler));
+		}
+		
+		// The shared memory runnable polls, it gets its own daemon thread which is interrupted if the server stops.
+		Thread shmThread = null;
+		
+		if(shmPath != null){
+			try {
+				shmThread = new Thread(new SharedMemoryRunnable(SharedMemoryTransport.create(Paths.get(shmPath)), scheduler), "SharedMemoryRunnable");
+				Paths.get(shmPath).toFile().deleteOnExit();
+				shmThread.setDaemon(true);
+				shmThread.start();
+				System.out.println("Using shared memory file: " + shmPath);
+			}
+			catch (IOException e) {
+				System.out.println("ERROR: Shared memory - " + e.getMessage());
+			}
+		}
+		
+		// Create and run the server. Clients are accepted as channels so their I/O uses pooled buffers.
+		try(ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+			serverChannel.bind(new InetSocketAddress(port));
+			
 			// Server listen thread.
 			while(true){
-				Socket client = serverSocket.accept();
-				
-				System.out.println("Connecting to a client " + client);
+				SocketChannel client = serverChannel.accept();
 				
-				executorService.execute(new ServerSocketRunnable(client));
+				executorService.execute(new ServerSocketRunnable(client, scheduler));
 			}
 		}
 		catch (IllegalArgumentException e){
@@ -86,8 +151,158 @@ public class Server {
 			System.out.println("ERROR: " + e.getMessage());
 		}
 		
+		// Stop the background listeners, a pool thread blocked in accept() would keep the process alive.
+		if(unixChannel != null){
+			try {
+				unixChannel.close();
+			}
+			catch (IOException e) {
+				System.out.println("ERROR: Unix domain socket - " + e.getMessage());
+			}
+		}
+		
+		if(shmThread != null){
+			shmThread.interrupt();
+		}
+		
 		// Shut down the rest of the connections.
 		System.out.println("Shutting down connections...");
 		executorService.shutdown();
+		scheduler.shutdown();
+	}
+	
+	
+	
+	
+	/**
+	 * Removes an option and its value from the command line arguments.
+	 * 
+	 * @param arguments The arguments, the option and its value are removed if present.
+	 * @param name      The option's name.
+	 * @return The option's value, or null if the option is not present.
+	 * @throws IllegalArgumentException If the option has no value.
+	 */
+	private static String removeOption(List<String> arguments, String name) {
+		int index = arguments.indexOf(name);
+		
+		if(index < 0){
+			return null;
+		}
+		
+		if(index + 1 == arguments.size()){
+			throw new IllegalArgumentException(name + " requires a path.");
+		}
+		
+		String value = arguments.remove(index + 1);
+		arguments.remove(index);
+		return value;
+	}
+	
+	
+	
+	
+	/**
+	 * Opens and binds a Unix domain socket.
+	 * 
+	 * @param path The path of the socket file, a stale socket left by a previous run is replaced.
+	 * @return The bound channel, or null if the socket could not be opened.
+	 */
+	private static ServerSocketChannel openUnixDomain(String path) {
+		ServerSocketChannel serverChannel = null;
+		
+		try {
+			serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			
+			Path socketPath = Paths.get(path);
+			removeStaleSocket(socketPath);
+			
+			serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+			socketPath.toFile().deleteOnExit();
+			
+			System.out.println("Using Unix domain socket: " + socketPath);
+			return serverChannel;
+		}
+		catch (IOException e) {
+			System.out.println("ERROR: Unix domain socket - " + e.getMessage());
+		}
+		catch (UnsupportedOperationException e){
+			System.out.println("ERROR: Unix domain sockets are not supported on this platform.");
+		}
+		
+		try {
+			if(serverChannel != null){
+				serverChannel.close();
+			}
+		}
+		catch (IOException e) {
+			// Do nothing.
+		}
+		
+		return null;
+	}
+	
+	
+	
+	
+	/**
+	 * Deletes a socket file left behind by a server which is no longer running. Anything else at the path,
+	 * a regular file or a socket which still accepts connections, is left alone and reported.
+	 * 
+	 * @param socketPath The path the server is about to bind.
+	 * @throws IOException If the path is in use or could not be checked.
+	 */
+	private static void removeStaleSocket(Path socketPath) throws IOException {
+		BasicFileAttributes attributes;
+		
+		try {
+			attributes = Files.readAttributes(socketPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		}
+		catch (NoSuchFileException e) {
+			return;
+		}
+		
+		// Sockets are neither files, directories nor links.
+		if(!attributes.isOther()){
+			throw new IOException(socketPath + " exists and is not a socket.");
+		}
+		
+		try {
+			SocketChannel.open(UnixDomainSocketAddress.of(socketPath)).close();
+		}
+		catch (ConnectException e) {
+			// Connection refused, nothing is listening anymore.
+			Files.delete(socketPath);
+			return;
+		}
+		
+		throw new IOException("Another server is listening on " + socketPath);
+	}
+	
+	
+	
+	
+	/**
+	 * Listens on a Unix domain socket until it is closed. Every new connection is handled in its own
+	 * thread by the {@link ServerSocketRunnable} class, exactly like a TCP connection.
+	 * 
+	 * @param serverChannel   The bound channel from {@link #openUnixDomain(String)}.
+	 * @param executorService The thread pool the connections are handled in.
+	 * @param scheduler       The scheduler which executes the commands.
+	 */
+	private static void listenUnixDomain(ServerSocketChannel serverChannel, ExecutorService executorService, CommandScheduler scheduler) {
+		try(serverChannel) {
+			// Server listen thread.
+			while(true){
+				SocketChannel client = serverChannel.accept();
+				
+				executorService.execute(new ServerSocketRunnable(client, scheduler));
+			}
+		}
+		catch (ClosedChannelException e) {
+			// The server is shutting down.
+		}
+		catch (IOException e) {
+			System.out.println("ERROR: Unix domain socket - " + e.getMessage());
+		}
 	}
 }
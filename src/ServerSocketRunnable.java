@@ -11,13 +11,18 @@
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.net.Socket;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.regex.Pattern;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 /**
  * The server runnable to be put into a thread and handle the client when a connection is made.
@@ -28,8 +33,26 @@ import java.util.regex.Pattern;
  * @since   1.8.0_20
  */
 public class ServerSocketRunnable implements Runnable {
-	/** The socket which this runnable manages. */
-	private Socket socket;
+	/** {@value} - The number of unanswered commands after which the server stops reading from a connection. */
+	public static final int MAX_UNANSWERED = 16;
+	
+	/** The connection which this runnable manages, over TCP or a Unix domain socket. */
+	private SocketChannel connection;
+	
+	/** The scheduler which executes the commands. */
+	private CommandScheduler scheduler;
+	
+	/**
+	 * Writes this connection's responses. The scheduler's threads only compute responses, so a client which
+	 * stops reading blocks its own writer instead of a lane thread shared with every other client.
+	 */
+	private ExecutorService writer;
+	
+	/** One permit per command which may be read before the oldest response is written. */
+	private Semaphore unanswered = new Semaphore(MAX_UNANSWERED);
+	
+	/** Completes once every response so far has been written. */
+	private CompletableFuture<Void> pendingWrites = CompletableFuture.completedFuture(null);
 	
 	private ObjectInputStream input;
 	private ObjectOutputStream output;
@@ -38,10 +61,12 @@ public class ServerSocketRunnable implements Runnable {
 	
 	/**
 	 * Default constructor.
-	 * @param s An open connection to a client obtained by accepting a client.
+	 * @param c  An open blocking channel obtained by accepting a client.
+	 * @param cs The scheduler which executes the commands.
 	 */
-	public ServerSocketRunnable(Socket s) {
-		socket = s;
+	public ServerSocketRunnable(SocketChannel c, CommandScheduler cs) {
+		connection = c;
+		scheduler = cs;
 	}
 	
 	
@@ -51,98 +76,178 @@ public class ServerSocketRunnable implements Runnable {
 	@Override
 	public void run() {
 		// Get object streams.
+		InputStream rawInput = null;
+		OutputStream rawOutput = null;
+		
 		try{
-			output = new ObjectOutputStream(socket.getOutputStream());
+			rawOutput = ChannelStreams.newOutputStream(connection);
+			rawInput = ChannelStreams.newInputStream(connection);
+			
+			output = new ObjectOutputStream(rawOutput);
 			output.flush();
-			input = new ObjectInputStream(socket.getInputStream());
+			input = new ObjectInputStream(rawInput);
 		}
 		catch(Exception e){
-			System.out.println("ERROR: could not create streams " + e.getMessage());
+			// A connection closed before the handshake is a health check probe, not worth logging.
+			if(!(e instanceof EOFException)){
+				System.out.println("ERROR: could not create streams " + e.getMessage());
+			}
+			
 			try {
-				socket.close();
+				// Closing the raw streams returns the buffers of a channel's streams.
+				if(rawOutput != null){
+					rawOutput.close();
+				}
+				
+				if(rawInput != null){
+					rawInput.close();
+				}
+				
+				connection.close();
 			}
 			catch (IOException e1) {
 				System.out.println("ERROR: Could not close connection - " + e.getMessage());
 			}
+			
+			BufferPool.DEFAULT.drainThreadCache();
 			return;
 		}
 		
+		System.out.println("Connecting to a client " + connection);
+		
+		writer = Executors.newSingleThreadExecutor((runnable) -> new Thread(runnable, "ServerSocketRunnable-writer"));
+		
 		// Receive commands until EOFException thrown
 		try{
-			// The delay after a command is processed in milliseconds. Increase this value to test the client's command queuing.
-			long serverDelayPerCommand = 100;
+			/* The delay after a command is processed in milliseconds. Increase this value to test the client's command queuing.
+			 * Can be set with -Dserver.commandDelay=MILLISECONDS, benchmarks set it to 0.
+			 */
+			long serverDelayPerCommand = Long.getLong("server.commandDelay", 100);
 			
-			// Create the command verifier.
-			Pattern validCommandPattern = Pattern.compile("-(end|echo|time|date|help|cls)(-.+)?");
+			// A client which wants multiplexed streams asks for them with its first object, which is never a command.
+			String command = (String)input.readObject();
 			
-			// Create the time and date formatters.
-			DateFormat timeFormat = new SimpleDateFormat("hh:mm:ss a");
-			DateFormat dateFormat = new SimpleDateFormat("d MMMM yyyy");
+			if(command.equals(Server.MUX_HELLO)){
+				output.writeObject(Server.SR_MUX);
+				output.flush();
+				
+				// Only leaves by throwing, an EOFException once the client closes the connection.
+				new MultiplexedSession(input, output, connection, scheduler, writer).run();
+			}
 			
 			// Main loop
 			while(true){
-				String command  = (String)input.readObject();
-				String response = "ERROR: Unrecognized command.";
+				// If the command is an end command, break from the loop.
+				if(CommandScheduler.isEndCommand(command)){
+					break;
+				}
 				
-				// Make sure that the string is in a valid format.
-				if(validCommandPattern.matcher(command).matches()){
-					if(command.startsWith("-echo-")){
-						response = "ECHO:" + command.substring(6);
-					}
-					else if(command.startsWith("-echo")){
-						response = "ECHO:";
-					}
-					else if(command.startsWith("-time")){
-						response = "TIME: " + timeFormat.format(new Date());
-					}
-					else if(command.startsWith("-date")){
-						response = "DATE: " + dateFormat.format(new Date());
-					}
-					else if(command.startsWith("-help")){
-						response = "Available Services:\nend\necho\ntime\ndate\nhelp\ncls\n";
+				// Stop reading while too many responses are waiting, the client's sends then back up in its socket.
+				unanswered.acquire();
+				
+				// Chain the response after the previous one so responses are written in the order the commands arrived.
+				CompletableFuture<String> response = scheduler.submit(command);
+				pendingWrites = pendingWrites.thenCombine(response, (previous, r) -> r).thenAcceptAsync(this::writeResponse, writer);
+				
+				/* Every response frees its permit however it completes, a write skipped because an earlier one failed included.
+				 * A failed write closes the channel, so the blocked readObject() throws and the reader stops.
+				 */
+				pendingWrites.whenComplete((ignored, e) -> {
+					unanswered.release();
+					
+					if(e != null){
+						closeConnection();
 					}
-					else if(command.startsWith("-cls")){
-						response = Server.SR_CLS;
+				});
+				
+				// Sleep.
+				if(serverDelayPerCommand > 0){
+					try{
+						Thread.sleep(serverDelayPerCommand);
 					}
-					// If the response is an end command, break from the loop.
-					else if(command.startsWith("-end")){
-						break;
+					catch(InterruptedException e){
+						// Do nothing.
 					}
 				}
 				
-				// Write the response
-				output.writeObject(response);
-				
-				// Sleep.
-				try{
-					Thread.sleep(serverDelayPerCommand);
-				}
-				catch(InterruptedException e){
-					// Do nothing.
-				}
+				command = (String)input.readObject();
 			}
 			
+			pendingWrites.join();
 			output.writeObject(Server.SR_END);
 		}
 		catch(EOFException e){
 			// Connection closed on client side.
 		}
+		catch(ClosedChannelException e){
+			// Closed after a response could not be written, reported below.
+		}
 		catch(ClassNotFoundException e){
 			System.out.println("ERROR: Unknown object type recieved.");
 		}
+		catch(CompletionException e){
+			System.out.println("ERROR: " + e.getCause().getMessage());
+		}
 		catch(Exception e){
 			System.out.println("ERROR: " + e.getMessage());
 		}
 		
-		// Close the connection
-		System.out.println("Server Socket: Closing client connection...");
+		// Let the responses which are still executing finish before the streams are closed.
+		try{
+			pendingWrites.join();
+		}
+		catch(CompletionException e){
+			System.out.println("ERROR: Could not write a response - " + e.getCause().getMessage());
+		}
+		
+		writer.shutdown();
+		
+		/* Close the connection. The raw streams are closed rather than the object streams, which would first flush
+		 * what a failed write left behind and fail again before returning the buffers.
+		 */
+		System.out.println("Server Socket: Closing client connection... " + scheduler);
 		try {
-			output.close();
-			input.close();
-			socket.close();
+			rawOutput.close();
+			rawInput.close();
 		}
 		catch (Exception e) {
 			System.out.println("ERROR: Could not close connection. " + e.getMessage());
 		}
+		
+		closeConnection();
+		
+		// The pool's thread may die while idle, hand the connection's buffers to the next one.
+		BufferPool.DEFAULT.drainThreadCache();
+	}
+	
+	
+	
+	
+	/**
+	 * Writes a response to the client. Called by the connection's writer thread, one response at a time.
+	 * 
+	 * @param response The response to write.
+	 * @throws UncheckedIOException If the response could not be written.
+	 */
+	private void writeResponse(String response){
+		try{
+			output.writeObject(response);
+		}
+		catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	
+	
+	
+	/** Closes the channel, a thread blocked reading or writing on it fails. Safe to call more than once. */
+	private void closeConnection(){
+		try {
+			connection.close();
+		}
+		catch (IOException e) {
+			System.out.println("ERROR: Could not close connection. " + e.getMessage());
+		}
 	}
 }
@@ -0,0 +1,198 @@
+/* File name:   SharedMemoryBenchmark.java
+ * Author:      Mark Kaganovsky
+ * Date:        October 19 2026
+ * Purpose:     Compares the round trip latency of the shared memory path to the TCP loopback path.
+ */
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+
+
+/**
+ * Measures the round trip latency of an echo command over TCP loopback and over the
+ * {@link SharedMemoryTransport}. Both servers run in this JVM and share one {@link CommandScheduler},
+ * but the paths differ beyond the transport. The TCP path serializes every command and response with
+ * object streams, chains the response through a future and writes it on the connection's writer thread.
+ * The shared memory path copies raw UTF-8 frames and answers on its polling thread with join(). The
+ * results compare the two end to end paths a client would use, not the transports alone.
+ *
+ * @author  Mark Kaganovsky
+ * @version 1.0
+ * @see     SharedMemoryTransport
+ * @since   16
+ */
+public class SharedMemoryBenchmark {
+	/** {@value} - The command sent every round trip. */
+	private static final String COMMAND = "-echo-benchmark";
+
+	/** {@value} - The number of round trips before measuring, to let the JIT compile the paths. */
+	private static final int WARMUP = 20_000;
+
+
+
+
+	/**
+	 * Runs the benchmark and prints the latency of both transports.
+	 *
+	 * @param args Takes an optional number of measured round trips. If one is not supplied then 100000 is used.
+	 * @throws Exception If either transport fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		int rounds = args.length == 1 ? Integer.parseInt(args[0]) : 100_000;
+
+		// The socket server's testing delay would dwarf everything else.
+		System.setProperty("server.commandDelay", "0");
+
+		CommandScheduler scheduler = new CommandScheduler();
+
+		System.out.println("Round trips: " + rounds);
+		print("TCP loopback", benchmarkTcp(scheduler, rounds));
+		print("Shared memory", benchmarkSharedMemory(scheduler, rounds));
+
+		scheduler.shutdown();
+	}
+
+
+
+
+	/**
+	 * Measures round trips through a {@link ServerSocketRunnable} over TCP loopback.
+	 *
+	 * @param scheduler The scheduler which executes the commands.
+	 * @param rounds    The number of measured round trips.
+	 * @return The latency of every measured round trip in nanoseconds.
+	 * @throws Exception If the connection fails.
+	 */
+	private static long[] benchmarkTcp(CommandScheduler scheduler, int rounds) throws Exception {
+		try(ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+			serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+
+			Thread server = new Thread(() -> {
+				try {
+					new ServerSocketRunnable(serverChannel.accept(), scheduler).run();
+				}
+				catch (IOException e) {
+					System.out.println("ERROR: " + e.getMessage());
+				}
+			});
+			server.start();
+
+			// Connected the same way as the ClientView.
+			try(SocketChannel channel = SocketChannel.open(serverChannel.getLocalAddress())) {
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+				ObjectOutputStream output = new ObjectOutputStream(ChannelStreams.newOutputStream(channel));
+				output.flush();
+				ObjectInputStream input = new ObjectInputStream(ChannelStreams.newInputStream(channel));
+
+				long[] latencies = new long[rounds];
+
+				for(int i = -WARMUP; i < rounds; ++i){
+					long start = System.nanoTime();
+					output.writeObject(COMMAND);
+					input.readObject();
+
+					if(i >= 0){
+						latencies[i] = System.nanoTime() - start;
+					}
+				}
+
+				output.writeObject("-end");
+				input.readObject();
+
+				return latencies;
+			}
+			finally {
+				server.join();
+			}
+		}
+	}
+
+
+
+
+	/**
+	 * Measures round trips through a {@link SharedMemoryRunnable}.
+	 *
+	 * @param scheduler The scheduler which executes the commands.
+	 * @param rounds    The number of measured round trips.
+	 * @return The latency of every measured round trip in nanoseconds.
+	 * @throws Exception If the transport fails.
+	 */
+	private static long[] benchmarkSharedMemory(CommandScheduler scheduler, int rounds) throws Exception {
+		// The transport only creates a file at a new path, or reuses one of its own.
+		Path directory = Files.createTempDirectory("SharedMemoryBenchmark");
+		Path path = directory.resolve("server.shm");
+
+		try {
+			Thread server = new Thread(new SharedMemoryRunnable(SharedMemoryTransport.create(path), scheduler));
+			server.setDaemon(true);
+			server.start();
+
+			try(SharedMemoryTransport client = SharedMemoryTransport.open(path)) {
+				long[] latencies = new long[rounds];
+
+				for(int i = -WARMUP; i < rounds; ++i){
+					long start = System.nanoTime();
+					client.send(COMMAND);
+					client.receive();
+
+					if(i >= 0){
+						latencies[i] = System.nanoTime() - start;
+					}
+				}
+
+				client.send("-end");
+				client.receive();
+
+				return latencies;
+			}
+		}
+		finally {
+			Files.deleteIfExists(path);
+			Files.delete(directory);
+		}
+	}
+
+
+
+
+	/**
+	 * Prints the average and percentiles of a set of latencies.
+	 *
+	 * @param name      The name of the transport.
+	 * @param latencies The latencies in nanoseconds, sorted by this method.
+	 */
+	private static void print(String name, long[] latencies) {
+		Arrays.sort(latencies);
+
+		double average = Arrays.stream(latencies).average().orElse(0) / 1000;
+
+		System.out.printf("%-14s avg %8.2f us, p50 %8.2f us, p99 %8.2f us, p99.9 %8.2f us%n", name + ":", average,
+				percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999));
+	}
+
+
+
+
+	/**
+	 * Finds a percentile of sorted latencies.
+	 *
+	 * @param sorted   The latencies in nanoseconds, sorted.
+	 * @param fraction The percentile as a fraction.
+	 * @return The percentile in microseconds.
+	 */
+	private static double percentile(long[] sorted, double fraction) {
+		return sorted[Math.min(sorted.length - 1, (int)(sorted.length * fraction))] / 1000.0;
+	}
+}
@@ -0,0 +1,81 @@
+/* File name:   SharedMemoryRunnable.java
+ * Author:      Mark Kaganovsky
+ * Date:        October 19 2026
+ * Purpose:     Serves the commands of clients attached through shared memory.
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+
+
+/**
+ * The server runnable to be put into a thread and serve the clients of a {@link SharedMemoryTransport}.
+ *
+ * Commands are executed by the same {@link CommandScheduler} as those of socket connections. Clients
+ * attach one after another, after answering an end command the runnable waits for the next client.
+ * Interrupting the thread stops the runnable the next time it waits for a command.
+ *
+ * @author  Mark Kaganovsky
+ * @version 1.0
+ * @see     ServerSocketRunnable
+ * @since   16
+ */
+public class SharedMemoryRunnable implements Runnable {
+	/** The server's side of the shared memory. */
+	private SharedMemoryTransport transport;
+
+	/** The scheduler which executes the commands. */
+	private CommandScheduler scheduler;
+
+
+
+
+	/**
+	 * Default constructor.
+	 *
+	 * @param t  The server's side of the shared memory.
+	 * @param cs The scheduler which executes the commands.
+	 */
+	public SharedMemoryRunnable(SharedMemoryTransport t, CommandScheduler cs) {
+		transport = t;
+		scheduler = cs;
+	}
+
+
+
+
+	/** Answers commands until the transport fails or the thread is interrupted. */
+	@Override
+	public void run() {
+		try{
+			// Main loop
+			while(!Thread.currentThread().isInterrupted()){
+				String command = transport.receive();
+
+				if(CommandScheduler.isEndCommand(command)){
+					transport.send(Server.SR_END);
+					System.out.println("Shared Memory: Client detached. " + scheduler);
+				}
+				else{
+					// One command at a time, so responses are sent in order by this thread only.
+					transport.send(scheduler.submit(command).join());
+				}
+			}
+		}
+		catch(InterruptedIOException e){
+			// The server is shutting down.
+		}
+		catch(IOException e){
+			System.out.println("ERROR: " + e.getMessage());
+		}
+
+		System.out.println("Shared Memory: Closing transport...");
+		try {
+			transport.close();
+		}
+		catch (IOException e) {
+			System.out.println("ERROR: Could not close transport. " + e.getMessage());
+		}
+	}
+}
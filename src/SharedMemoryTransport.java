@@ -0,0 +1,483 @@
+/* File name:   SharedMemoryTransport.java
+ * Author:      Mark Kaganovsky
+ * Date:        October 19 2026
+ * Purpose:     Experimental transport exchanging commands and responses through
+ *              ring buffers in a memory mapped file.
+ * Class List:  SharedMemoryTransport
+ *              Ring
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+
+
+/**
+ * This class is an experimental transport between the {@link Server} and one client on the same host.
+ *
+ * The file holds two single producer, single consumer ring buffers, one carrying commands to the server
+ * and one carrying responses to the client. A frame is the payload length, the session it belongs to and
+ * the UTF-8 payload, wrapping around the end of the ring. The producer publishes a frame by advancing the
+ * ring's tail with release semantics, the consumer frees it by advancing the head the same way.
+ *
+ * Neither side can wake the other across processes, so a side waiting for a frame or for room first
+ * spins (only on multiprocessors), then yields, then parks for exponentially longer periods up to
+ * {@value #MAX_PARK_NANOS} nanoseconds.
+ *
+ * File layout, all indexes are longs which only ever increase:
+ * <pre>
+ * 0                  magic, written by the server once the file is ready
+ * 8                  session, incremented by every client which attaches
+ * 64                 command ring:  tail, head (own cache line), data
+ * 64 + RING_SIZE     response ring: tail, head (own cache line), data
+ * </pre>
+ *
+ * Only one client may be attached at a time, a client holds a lock on the header while it is attached.
+ * The server never truncates the file, a process which maps a truncated file crashes on its next access.
+ * Frames left in the rings by a client which died are fenced by their session: the server skips commands
+ * of old sessions and tags every response with the session of its command, the client drops responses
+ * of other sessions.
+ *
+ * @author  Mark Kaganovsky
+ * @version 1.0
+ * @see     SharedMemoryRunnable
+ * @since   16
+ */
+public class SharedMemoryTransport implements Closeable {
+	/** {@value} - The capacity of the data area of each ring in bytes, a power of two. */
+	public static final int CAPACITY = 1024 * 1024;
+
+	/** {@value} - Marks a file which the server has initialized. */
+	private static final long MAGIC = 0x4B414753484D3031L;
+
+	/** {@value} - The size of the file header in bytes, one cache line. */
+	private static final int HEADER_SIZE = 64;
+
+	/** {@value} - The offset of the session counter in the header. */
+	private static final int SESSION_OFFSET = 8;
+
+	/** {@value} - The size of a frame's length and session tag in bytes. */
+	private static final int FRAME_HEADER = Integer.BYTES + Long.BYTES;
+
+	/** {@value} - The offset of the data area within a ring, after the tail and head cache lines. */
+	private static final int RING_DATA = 128;
+
+	/** {@value} - The size of a ring including its indexes. */
+	private static final int RING_SIZE = RING_DATA + CAPACITY;
+
+	/** The number of times a waiting side spins before it yields. Spinning only helps if the other side runs meanwhile. */
+	private static final int SPIN_TRIES = Runtime.getRuntime().availableProcessors() > 1 ? 10_000 : 0;
+
+	/** {@value} - The number of times a waiting side yields after spinning, before it starts parking. */
+	private static final int YIELD_TRIES = 100;
+
+	/** {@value} - The longest a waiting side parks between checks, in nanoseconds. */
+	private static final long MAX_PARK_NANOS = 1_000_000;
+
+	/** Ordered access to the longs of the mapped file. */
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	/** The mapped file. */
+	private final FileChannel file;
+
+	/** The mapping of the whole file. */
+	private final MappedByteBuffer buffer;
+
+	/** True for the server's side. */
+	private final boolean server;
+
+	/** The frames this side receives. */
+	private final Ring inbound;
+
+	/** The frames this side sends. */
+	private final Ring outbound;
+
+	/** The session sent frames are tagged with. The client's own session, or the session of the last command received. */
+	private long session;
+
+
+
+
+	/**
+	 * Maps the file and picks the rings of one side.
+	 *
+	 * @param f      The open file.
+	 * @param server True for the server's side, false for the client's side.
+	 * @throws IOException If the file could not be mapped.
+	 */
+	private SharedMemoryTransport(FileChannel f, boolean s) throws IOException {
+		file = f;
+		server = s;
+		buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + 2L * RING_SIZE);
+
+		Ring commands = new Ring(buffer, HEADER_SIZE);
+		Ring responses = new Ring(buffer, HEADER_SIZE + RING_SIZE);
+
+		inbound = server ? commands : responses;
+		outbound = server ? responses : commands;
+	}
+
+
+
+
+	/**
+	 * Creates the file, or resets a file left by a previous server, and returns the server's side of it.
+	 * An existing file is never truncated, a client which still maps it would crash on its next access.
+	 * The server holds a lock past the end of the rings while the transport is open, so a second server
+	 * can not reset the file under the first.
+	 *
+	 * @param path The path of the file, new or created by a previous server.
+	 * @return The server's side.
+	 * @throws IOException If the file could not be created or mapped, is not a shared memory file, or is in use.
+	 */
+	public static SharedMemoryTransport create(Path path) throws IOException {
+		FileChannel file;
+		boolean existed = false;
+
+		try{
+			file = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+		catch(FileAlreadyExistsException e){
+			file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			existed = true;
+		}
+
+		try{
+			if(existed && !hasMagic(file)){
+				throw new IOException(path + " exists and is not a shared memory file, use a new path.");
+			}
+
+			// Null if another process holds the lock, throws if this one does.
+			if(file.tryLock(HEADER_SIZE + 2L * RING_SIZE, 1, false) == null){
+				throw new IOException("Another server is using " + path);
+			}
+
+			// Mapping extends a new file to its full size, zeroing the session and the indexes of both rings.
+			SharedMemoryTransport transport = new SharedMemoryTransport(file, true);
+
+			if(existed){
+				// Clients can not attach while the header is locked, frames of a client which died are dropped.
+				FileLock header = file.tryLock(0, HEADER_SIZE, false);
+
+				if(header == null){
+					throw new IOException("A client is still attached to " + path);
+				}
+
+				// The session counter is kept, so a client of the previous server which still maps the file stays fenced.
+				LONGS.setRelease(transport.buffer, 0, 0L);
+				transport.inbound.reset();
+				transport.outbound.reset();
+
+				header.release();
+			}
+
+			LONGS.setRelease(transport.buffer, 0, MAGIC);
+
+			return transport;
+		}
+		catch(OverlappingFileLockException e){
+			file.close();
+			throw new IOException(path + " is already in use by this process.");
+		}
+		catch(IOException e){
+			file.close();
+			throw e;
+		}
+	}
+
+
+
+
+	/**
+	 * Checks that a file has the size of a shared memory file and has been initialized by a server.
+	 *
+	 * @param file The open file.
+	 * @return True if the file is a shared memory file.
+	 * @throws IOException If the file could not be read.
+	 */
+	private static boolean hasMagic(FileChannel file) throws IOException {
+		if(file.size() != HEADER_SIZE + 2L * RING_SIZE){
+			return false;
+		}
+
+		ByteBuffer magic = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.nativeOrder());
+
+		while(magic.hasRemaining() && file.read(magic, magic.position()) >= 0){
+			// Keep reading, a positional read may return fewer bytes.
+		}
+
+		return !magic.hasRemaining() && magic.getLong(0) == MAGIC;
+	}
+
+
+
+
+	/**
+	 * Opens a file created by the server and attaches to it as a new session. The client stays attached,
+	 * holding a lock on the header, until the transport is closed or the process dies.
+	 *
+	 * @param path The path of the file.
+	 * @return The client's side.
+	 * @throws IOException If the file could not be mapped, the server has not initialized it, or another client is attached.
+	 */
+	public static SharedMemoryTransport open(Path path) throws IOException {
+		FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		try{
+			// Null if another process holds the lock, throws if this one does.
+			if(file.tryLock(0, HEADER_SIZE, false) == null){
+				throw new OverlappingFileLockException();
+			}
+		}
+		catch(OverlappingFileLockException e){
+			file.close();
+			throw new IOException("Another client is attached to " + path);
+		}
+
+		if(file.size() < HEADER_SIZE + 2L * RING_SIZE){
+			file.close();
+			throw new IOException("The server has not initialized " + path);
+		}
+
+		SharedMemoryTransport transport = new SharedMemoryTransport(file, false);
+
+		if((long)LONGS.getAcquire(transport.buffer, 0) != MAGIC){
+			transport.close();
+			throw new IOException("The server has not initialized " + path);
+		}
+
+		// Published before the first command, which the server reads with acquire semantics.
+		transport.session = (long)LONGS.getAndAdd(transport.buffer, SESSION_OFFSET, 1L) + 1;
+
+		return transport;
+	}
+
+
+
+
+	/**
+	 * Sends a frame tagged with this side's session, waiting while the ring is full.
+	 * The server's responses are tagged with the session of the last command received.
+	 *
+	 * @param message The command or response.
+	 * @throws InterruptedIOException If interrupted while waiting.
+	 * @throws IOException            If the message is larger than the ring.
+	 */
+	public void send(String message) throws IOException {
+		outbound.write(message.getBytes(StandardCharsets.UTF_8), session);
+	}
+
+
+
+
+	/**
+	 * Receives a frame, waiting until one of the current session arrives. Frames of other sessions,
+	 * left over from a client which died, are skipped.
+	 *
+	 * @return The command or response.
+	 * @throws InterruptedIOException If interrupted while waiting.
+	 * @throws IOException            If the frame is corrupt.
+	 */
+	public String receive() throws IOException {
+		while(true){
+			byte[] payload = inbound.read();
+
+			if(server){
+				// Commands of a previous session would only be answered to the wrong client.
+				if(inbound.lastSession == (long)LONGS.getAcquire(buffer, SESSION_OFFSET)){
+					session = inbound.lastSession;
+					return new String(payload, StandardCharsets.UTF_8);
+				}
+			}
+			else if(inbound.lastSession == session){
+				return new String(payload, StandardCharsets.UTF_8);
+			}
+		}
+	}
+
+
+
+
+	/** Closes the file, which detaches a client. The mapping stays valid until it is garbage collected. */
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+
+
+
+	/**
+	 * Waits for a condition by spinning, then yielding, then parking for longer and longer.
+	 *
+	 * @param attempt The number of times the condition has been checked so far.
+	 * @throws InterruptedIOException If the thread has been interrupted, checked once parking.
+	 */
+	private static void backOff(int attempt) throws InterruptedIOException {
+		if(attempt < SPIN_TRIES){
+			Thread.onSpinWait();
+		}
+		else if(attempt < SPIN_TRIES + YIELD_TRIES){
+			Thread.yield();
+		}
+		else{
+			LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(attempt - SPIN_TRIES - YIELD_TRIES, 10)));
+
+			if(Thread.interrupted()){
+				throw new InterruptedIOException("Interrupted while waiting for the other side.");
+			}
+		}
+	}
+
+
+
+
+	/**
+	 * A single producer, single consumer ring buffer inside the mapped file.
+	 *
+	 * @author  Mark Kaganovsky
+	 * @version 1.0
+	 * @since   16
+	 */
+	private static class Ring {
+		/** The mapped file. */
+		private final MappedByteBuffer buffer;
+
+		/** The offset of the producer's index, the total number of bytes written. */
+		private final int tailOffset;
+
+		/** The offset of the consumer's index, the total number of bytes read. */
+		private final int headOffset;
+
+		/** The offset of the data area. */
+		private final int dataOffset;
+
+		/** The session tag of the frame read last. */
+		private long lastSession;
+
+		/**
+		 * Default constructor.
+		 *
+		 * @param b      The mapped file.
+		 * @param offset The offset of the ring within the file.
+		 */
+		public Ring(MappedByteBuffer b, int offset) {
+			buffer = b;
+			tailOffset = offset;
+			headOffset = offset + 64;
+			dataOffset = offset + RING_DATA;
+		}
+
+		/** Empties the ring. Only called while neither side uses it. */
+		public void reset() {
+			LONGS.setRelease(buffer, tailOffset, 0L);
+			LONGS.setRelease(buffer, headOffset, 0L);
+		}
+
+		/**
+		 * Writes a frame, waiting while there is not enough room.
+		 *
+		 * @param payload The frame's payload.
+		 * @param session The session the frame belongs to.
+		 * @throws InterruptedIOException If interrupted while waiting.
+		 * @throws IOException            If the frame can never fit.
+		 */
+		public void write(byte[] payload, long session) throws IOException {
+			int frameSize = FRAME_HEADER + payload.length;
+
+			if(frameSize > CAPACITY){
+				throw new IOException("Frame too large " + payload.length);
+			}
+
+			// Only this side moves the tail, so it can be read plainly.
+			long tail = (long)LONGS.get(buffer, tailOffset);
+
+			for(int attempt = 0; tail + frameSize - (long)LONGS.getAcquire(buffer, headOffset) > CAPACITY; ++attempt){
+				backOff(attempt);
+			}
+
+			copyIn(tail, ByteBuffer.allocate(FRAME_HEADER).putInt(payload.length).putLong(session).array());
+			copyIn(tail + FRAME_HEADER, payload);
+
+			// Publish the frame.
+			LONGS.setRelease(buffer, tailOffset, tail + frameSize);
+		}
+
+		/**
+		 * Reads a frame, waiting until one is available. Its session is left in {@link #lastSession}.
+		 *
+		 * @return The frame's payload.
+		 * @throws InterruptedIOException If interrupted while waiting.
+		 * @throws IOException            If the frame's length is corrupt.
+		 */
+		public byte[] read() throws IOException {
+			// Only this side moves the head, so it can be read plainly.
+			long head = (long)LONGS.get(buffer, headOffset);
+
+			for(int attempt = 0; (long)LONGS.getAcquire(buffer, tailOffset) == head; ++attempt){
+				backOff(attempt);
+			}
+
+			byte[] header = new byte[FRAME_HEADER];
+			copyOut(head, header);
+
+			ByteBuffer fields = ByteBuffer.wrap(header);
+			int payloadLength = fields.getInt();
+			lastSession = fields.getLong();
+
+			if(payloadLength < 0 || payloadLength > CAPACITY - FRAME_HEADER){
+				throw new IOException("Invalid frame length " + payloadLength);
+			}
+
+			byte[] payload = new byte[payloadLength];
+			copyOut(head + FRAME_HEADER, payload);
+
+			// Free the frame.
+			LONGS.setRelease(buffer, headOffset, head + FRAME_HEADER + payloadLength);
+
+			return payload;
+		}
+
+		/**
+		 * Copies bytes into the data area, wrapping around its end.
+		 *
+		 * @param position The index the bytes start at.
+		 * @param bytes    The bytes to copy.
+		 */
+		private void copyIn(long position, byte[] bytes) {
+			int start = (int)(position & (CAPACITY - 1));
+			int first = Math.min(bytes.length, CAPACITY - start);
+
+			buffer.put(dataOffset + start, bytes, 0, first);
+			buffer.put(dataOffset, bytes, first, bytes.length - first);
+		}
+
+		/**
+		 * Copies bytes out of the data area, wrapping around its end.
+		 *
+		 * @param position The index the bytes start at.
+		 * @param bytes    The array to fill.
+		 */
+		private void copyOut(long position, byte[] bytes) {
+			int start = (int)(position & (CAPACITY - 1));
+			int first = Math.min(bytes.length, CAPACITY - start);
+
+			buffer.get(dataOffset + start, bytes, 0, first);
+			buffer.get(dataOffset, bytes, first, bytes.length - first);
+		}
+	}
+}